@@ -0,0 +1,81 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** In-process {@code handleCommand} benchmarks against a generated {@code workload} database. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private Path storageFolder;
+    private DBServer server;
+    private int nextMark;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        storageFolder = WorkloadGenerator.generateTemporary(rows, WorkloadGenerator.DEFAULT_SEED);
+        server = new DBServer(storageFolder);
+        server.handleCommand("USE workload;");
+        server.handleCommand("CREATE TABLE scratch (name, mark, pass);");
+        server.handleCommand("PREPARE above AS SELECT name FROM marks WHERE mark > ?;");
+        server.handleCommand("PREPARE addmark AS INSERT INTO scratch VALUES (?, ?, ?);");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WorkloadGenerator.deleteRecursively(storageFolder);
+    }
+
+    /** Parse-dominated: the table is empty, so almost all the time goes on matching and planning. */
+    @Benchmark
+    public String parseSelectOnEmptyTable() {
+        return server.handleCommand("SELECT name, mark FROM scratch WHERE mark >= 50;");
+    }
+
+    @Benchmark
+    public String insert() {
+        return server.handleCommand("INSERT INTO scratch VALUES ('Simon', " + (nextMark++ % 100) + ", TRUE);");
+    }
+
+    @Benchmark
+    public String insertPrepared() {
+        return server.handleCommand("EXECUTE addmark ('Simon', " + (nextMark++ % 100) + ", TRUE);");
+    }
+
+    @Benchmark
+    public String selectAll() {
+        return server.handleCommand("SELECT * FROM marks;");
+    }
+
+    @Benchmark
+    public String selectWhere() {
+        return server.handleCommand("SELECT name FROM marks WHERE mark > 90;");
+    }
+
+    @Benchmark
+    public String selectWherePrepared() {
+        return server.handleCommand("EXECUTE above (90);");
+    }
+}
@@ -0,0 +1,48 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time to construct a server, i.e. to load every table in its storage folder from disk. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private Path storageFolder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        storageFolder = WorkloadGenerator.generateTemporary(rows, WorkloadGenerator.DEFAULT_SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WorkloadGenerator.deleteRecursively(storageFolder);
+    }
+
+    @Benchmark
+    public DBServer loadTables() {
+        return new DBServer(storageFolder);
+    }
+}
@@ -0,0 +1,93 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end round trips through a real socket, using the same protocol as {@link DBClient}.
+ * The forked JVM disables the server's periodic stats dump, which would otherwise leave a
+ * {@code -stats.txt} file next to the temporary storage folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddbserver.stats.interval=0")
+public class SocketRoundTripBenchmark {
+
+    private Path storageFolder;
+    private DBClient client;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        storageFolder = WorkloadGenerator.generateTemporary(1000, WorkloadGenerator.DEFAULT_SEED);
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        DBServer server = new DBServer(storageFolder);
+        final int serverPort = port;
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.blockingListenOn(serverPort);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        client = connect(port);
+        client.sendCommand("USE workload;");
+        client.prepare("byid", "SELECT name, mark FROM marks WHERE id == ?;");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        WorkloadGenerator.deleteRecursively(storageFolder);
+    }
+
+    @Benchmark
+    public String pointSelect() throws IOException {
+        return client.sendCommand("SELECT name, mark FROM marks WHERE id == 500;");
+    }
+
+    @Benchmark
+    public String pointSelectPrepared() throws IOException {
+        return client.execute("byid", 500);
+    }
+
+    @Benchmark
+    public String selectAll() throws IOException {
+        return client.sendCommand("SELECT * FROM marks;");
+    }
+
+    // The server thread takes a moment to start listening, so retry the connection
+    private static DBClient connect(int port) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new DBClient("localhost", port);
+            } catch (IOException e) {
+                if (attempt >= 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package edu.uob;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Seeded generator for {@code marks}/{@code coursework}-shaped tables, written straight into a
+ * storage folder in the server's on-disk format. The same (rows, seed) pair always produces
+ * byte-identical files, so results are comparable across commits and machines.
+ */
+public class WorkloadGenerator {
+
+    public static final long DEFAULT_SEED = 42L;
+    private static final String[] TASKS = {"OXO", "DB", "STAG", "TANKS", "MAZE", "CHAT"};
+
+    /** Usage: {@code WorkloadGenerator <storageFolder> <rows> [seed]}; creates database {@code workload}. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: WorkloadGenerator <storageFolder> <rows> [seed]");
+            System.exit(1);
+        }
+        Path storageFolder = Paths.get(args[0]);
+        int rows = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        generate(storageFolder, "workload", rows, seed);
+        System.out.println("Generated " + rows + " rows per table in " + storageFolder.resolve("workload"));
+    }
+
+    /**
+     * Writes {@code marks (name, mark, pass)} and {@code coursework (task, submission)} with
+     * {@code rows} rows each; {@code submission} refers to a {@code marks} id.
+     */
+    public static void generate(Path storageFolder, String databaseName, int rows, long seed) throws IOException {
+        Path dbDir = storageFolder.resolve(databaseName);
+        Files.createDirectories(dbDir);
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(dbDir.resolve("marks.txt"))) {
+            writer.write("id\tname\tmark\tpass");
+            writer.newLine();
+            for (int id = 1; id <= rows; id++) {
+                int mark = random.nextInt(101);
+                writer.write(id + "\t" + randomName(random) + "\t" + mark + "\t" + (mark >= 40 ? "TRUE" : "FALSE"));
+                writer.newLine();
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dbDir.resolve("coursework.txt"))) {
+            writer.write("id\ttask\tsubmission");
+            writer.newLine();
+            for (int id = 1; id <= rows; id++) {
+                writer.write(id + "\t" + TASKS[random.nextInt(TASKS.length)] + "\t" + (1 + random.nextInt(rows)));
+                writer.newLine();
+            }
+        }
+    }
+
+    /** Creates a fresh temporary storage folder containing a generated {@code workload} database. */
+    public static Path generateTemporary(int rows, long seed) throws IOException {
+        Path storageFolder = Files.createTempDirectory("cw-db-bench");
+        generate(storageFolder, "workload", rows, seed);
+        return storageFolder;
+    }
+
+    public static void deleteRecursively(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String randomName(Random random) {
+        int length = 4 + random.nextInt(5);
+        StringBuilder name = new StringBuilder(length);
+        name.append((char) ('A' + random.nextInt(26)));
+        for (int i = 1; i < length; i++) {
+            name.append((char) ('a' + random.nextInt(26)));
+        }
+        return name.toString();
+    }
+}
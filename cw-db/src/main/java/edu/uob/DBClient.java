@@ -2,15 +2,20 @@ package edu.uob;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
 
-public class DBClient {
+public class DBClient implements Closeable {
 
     private static final char END_OF_TRANSMISSION = 4;
 
+    private final Socket socket;
+    private final BufferedReader socketReader;
+    private final BufferedWriter socketWriter;
+
     public static void main(String[] args) throws IOException {
         BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
         Socket socket = new Socket("localhost", 8888);
@@ -35,4 +40,98 @@ public class DBClient {
             incomingMessage = socketReader.readLine();
         }
     }
+
+    /** Opens a programmatic connection to a running DB server. */
+    public DBClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+    }
+
+    /**
+     * Sends a single command and returns the full response (without the end-of-transmission marker).
+     *
+     * @throws IllegalArgumentException if the command contains a line break or tab, since the protocol
+     *     is one command per line and tabs separate cells in the table files
+     */
+    public String sendCommand(String command) throws IOException {
+        checkNoControlCharacters(command);
+        socketWriter.write(command + "\n");
+        socketWriter.flush();
+        StringBuilder response = new StringBuilder();
+        String incomingMessage = socketReader.readLine();
+        if (incomingMessage == null) {
+            throw new IOException("Server disconnected (end-of-stream)");
+        }
+        while (incomingMessage != null && !incomingMessage.contains("" + END_OF_TRANSMISSION + "")) {
+            if (response.length() > 0) {
+                response.append("\n");
+            }
+            response.append(incomingMessage);
+            incomingMessage = socketReader.readLine();
+        }
+        return response.toString();
+    }
+
+    /** Prepares a SELECT or INSERT statement on the server, using {@code ?} for each parameter. */
+    public String prepare(String name, String statement) throws IOException {
+        checkNoControlCharacters(statement);
+        statement = statement.trim();
+        if (!statement.endsWith(";")) {
+            statement += ";";
+        }
+        return sendCommand("PREPARE " + name + " AS " + statement);
+    }
+
+    /**
+     * Executes a previously prepared statement. Strings are sent quoted (with embedded quotes doubled),
+     * so parameter values are never interpreted as SQL by the server.
+     *
+     * @throws IllegalArgumentException if a parameter contains a line break or tab
+     */
+    public String execute(String name, Object... params) throws IOException {
+        StringBuilder command = new StringBuilder("EXECUTE " + name);
+        if (params.length > 0) {
+            command.append(" (");
+            for (int i = 0; i < params.length; i++) {
+                if (i > 0) {
+                    command.append(", ");
+                }
+                command.append(formatParameter(params[i]));
+            }
+            command.append(")");
+        }
+        return sendCommand(command.append(";").toString());
+    }
+
+    /** Deallocates a previously prepared statement. */
+    public String deallocate(String name) throws IOException {
+        return sendCommand("DEALLOCATE " + name + ";");
+    }
+
+    private static String formatParameter(Object param) {
+        if (param == null) {
+            return "NULL";
+        }
+        if (param instanceof Number) {
+            return param.toString();
+        }
+        if (param instanceof Boolean) {
+            return param.toString().toUpperCase();
+        }
+        String value = param.toString();
+        checkNoControlCharacters(value);
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static void checkNoControlCharacters(String text) {
+        if (text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0 || text.indexOf('\t') >= 0) {
+            throw new IllegalArgumentException("Commands and parameters cannot contain line breaks or tabs");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
 }
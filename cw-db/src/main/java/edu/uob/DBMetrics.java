@@ -0,0 +1,199 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free server metrics: a latency histogram per (command, phase) pair, rows
+ * scanned/returned per table and named gauges (e.g. replication lag). Recording
+ * never blocks, so it is safe to call on the request path; reports are built from
+ * a (slightly racy) snapshot.
+ */
+public class DBMetrics {
+
+    // Phase indices into the array returned by latenciesFor()
+    public static final int PARSE = 0;
+    public static final int PLAN = 1;
+    public static final int EXECUTE = 2;
+    public static final int PERSIST = 3;
+    public static final int SERIALIZE = 4;
+    public static final int TOTAL = 5;
+    private static final String[] PHASE_NAMES = {"parse", "plan", "execute", "persist", "serialize", "total"};
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram[]> latenciesByCommand = new ConcurrentHashMap<>();
+    private final Map<String, TableRows> tableRows = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the histograms for one command type, indexed by phase ({@link #PARSE} ... {@link #TOTAL}).
+     * Callers should hold on to the array so that recording is a plain array access.
+     */
+    LatencyHistogram[] latenciesFor(String command) {
+        return latenciesByCommand.computeIfAbsent(command, k -> {
+            LatencyHistogram[] histograms = new LatencyHistogram[PHASE_NAMES.length];
+            for (int phase = 0; phase < histograms.length; phase++) {
+                histograms[phase] = new LatencyHistogram();
+                latencies.put(command + "." + PHASE_NAMES[phase], histograms[phase]);
+            }
+            return histograms;
+        });
+    }
+
+    /** Returns the row counters for {@code <database>.<table>}; callers should cache the result. */
+    TableRows rowsFor(String table) {
+        return tableRows.computeIfAbsent(table, k -> new TableRows());
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void setGauge(String name, long value) {
+        gauges.computeIfAbsent(name, k -> new AtomicLong()).set(value);
+    }
+
+    /**
+     * Builds the report as a single table in the same layout as SELECT output: a {@code metric\tfield\tvalue}
+     * header line, then one line per value. Latencies are in microseconds; per-table row counts use
+     * {@code <database>.<table>} as the metric name.
+     */
+    public String report() {
+        StringBuilder output = new StringBuilder("metric\tfield\tvalue");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            String metric = entry.getKey();
+            LatencyHistogram h = entry.getValue();
+            if (h.getCount() == 0) {
+                continue;
+            }
+            appendLine(output, metric, "count", String.valueOf(h.getCount()));
+            appendLine(output, metric, "mean_us", micros(h.getMean()));
+            appendLine(output, metric, "p50_us", micros(h.getValueAtPercentile(50)));
+            appendLine(output, metric, "p90_us", micros(h.getValueAtPercentile(90)));
+            appendLine(output, metric, "p99_us", micros(h.getValueAtPercentile(99)));
+            appendLine(output, metric, "max_us", micros(h.getMax()));
+        }
+        for (Map.Entry<String, TableRows> entry : new TreeMap<>(tableRows).entrySet()) {
+            appendLine(output, entry.getKey(), "rows_scanned", String.valueOf(entry.getValue().scanned.sum()));
+            appendLine(output, entry.getKey(), "rows_returned", String.valueOf(entry.getValue().returned.sum()));
+        }
+        appendLine(output, "errors", "count", String.valueOf(errors.sum()));
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(gauges).entrySet()) {
+            appendLine(output, entry.getKey(), "value", String.valueOf(entry.getValue().get()));
+        }
+        return output.toString();
+    }
+
+    private static void appendLine(StringBuilder output, String metric, String field, String value) {
+        output.append("\n").append(metric).append("\t").append(field).append("\t").append(value);
+    }
+
+    /** Writes the current report to {@code file}, replacing it atomically where the file system allows. */
+    public void dumpTo(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, report() + "\n");
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    /** Rows scanned and returned by SELECTs on one table. */
+    static class TableRows {
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder returned = new LongAdder();
+
+        void record(long scannedRows, long returnedRows) {
+            scanned.add(scannedRows);
+            returned.add(returnedRows);
+        }
+    }
+
+    /**
+     * HDR-style histogram over nanosecond values: each power-of-two range is split into
+     * {@code SUB_BUCKETS} linear buckets, giving a bounded relative error (~1/SUB_BUCKETS)
+     * with a fixed-size array and no allocation when recording.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            counts.incrementAndGet(bucketIndex(nanos));
+            count.increment();
+            sum.add(nanos);
+            long currentMax = max.get();
+            while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+                currentMax = max.get();
+            }
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        /** Returns the upper bound of the bucket containing the given percentile (0-100). */
+        long getValueAtPercentile(double percentile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS;
+            return (magnitude + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long bucketUpperBound(int index) {
+            int magnitude = index / SUB_BUCKETS - 1;
+            int subBucket = index % SUB_BUCKETS;
+            if (magnitude < 0) {
+                return subBucket;
+            }
+            return (((long) (SUB_BUCKETS + subBucket + 1)) << magnitude) - 1;
+        }
+    }
+}
@@ -7,11 +7,18 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,22 +26,133 @@ import java.util.regex.Pattern;
 public class DBServer {
 
     private static final char END_OF_TRANSMISSION = 4;
+    private static final Pattern CREATE_DATABASE_PATTERN =
+        Pattern.compile("(?i)^CREATE\\s+DATABASE\\s+(\\w+)\\s*;$");
+    private static final Pattern USE_PATTERN =
+        Pattern.compile("(?i)^USE\\s+(\\w+)\\s*;$");
+    private static final Pattern CREATE_TABLE_PATTERN =
+        Pattern.compile("(?i)^CREATE\\s+TABLE\\s+(\\w+)(?:\\s*\\(([^)]+)\\))?\\s*;$");
+    private static final Pattern INSERT_PATTERN =
+        Pattern.compile("(?i)^INSERT\\s+INTO\\s+(\\w+)\\s+VALUES\\s*\\((.+)\\)\\s*;$");
+    private static final Pattern SELECT_PATTERN =
+        Pattern.compile("(?i)^SELECT\\s+(.+?)\\s+FROM\\s+(\\w+)(?:\\s+WHERE\\s+(.+))?\\s*;$");
+    private static final Pattern CONDITION_PATTERN =
+        Pattern.compile("(?i)^(\\w+)\\s*(==|>=|<=|!=|>|<|LIKE)\\s*(.+)$");
+    private static final Pattern PREPARE_PATTERN =
+        Pattern.compile("(?i)^PREPARE\\s+(\\w+)\\s+AS\\s+(.+;)$");
+    private static final Pattern EXECUTE_PATTERN =
+        Pattern.compile("(?i)^EXECUTE\\s+(\\w+)(?:\\s*\\((.*)\\))?\\s*;$");
+    private static final Pattern DEALLOCATE_PATTERN =
+        Pattern.compile("(?i)^DEALLOCATE\\s+(\\w+)\\s*;$");
+    private static final Pattern SHOW_STATS_PATTERN =
+        Pattern.compile("(?i)^SHOW\\s+STATS\\s*;$");
+    // 统计中使用的命令类型（其他关键字统一记为 OTHER，避免指标数量无限增长）
+    private static final Set<String> COMMAND_TYPES =
+        Set.of("CREATE", "USE", "INSERT", "SELECT", "PREPARE", "EXECUTE", "DEALLOCATE", "SHOW");
+    // 统计文件的写入间隔（秒），0 表示不写入（测试与基准测试使用）
+    private static final long STATS_DUMP_INTERVAL_SECONDS = Long.getLong("dbserver.stats.interval", 10);
+    private static final int LOG_SAMPLE_RATE = Integer.getInteger("dbserver.log.sample", 100);
+    private static final String READ_ONLY_ERROR = "[ERROR] Server is a read-only replica";
     private String storageFolderPath;
     private String currentDatabaseName;
     // 内存中存储所有数据库（数据库名全部转换为小写）
     private Map<String, Database> databases;
+    // 当前会话中已准备好的语句（语句名全部转换为小写）
+    private Map<String, StatementPlan> preparedStatements;
+    private DBMetrics metrics;
+    // 当前命令类型的各阶段直方图及命令开始时间，用于分阶段记录耗时
+    private DBMetrics.LatencyHistogram[] currentLatencies;
+    private long commandStartNanos;
+    private SampledLogger logger;
+    // 复制：只读副本不接受写命令；主库把每次成功的写操作推送给所有订阅者
+    private boolean readOnly;
+    private volatile long changeSequence;
+    // 订阅者的变更队列 -> 队列溢出时断开该订阅者的回调
+    private final Map<BlockingQueue<String>, Runnable> changeSubscribers = new ConcurrentHashMap<>();
 
+    /**
+     * 可选参数：--port &lt;n&gt;、--storage &lt;folder&gt;、--replication-port &lt;n&gt;（作为主库供副本订阅）、
+     * --replica-of &lt;host:port&gt;（作为只读副本运行）
+     */
     public static void main(String args[]) throws IOException {
-        DBServer server = new DBServer();
-        server.blockingListenOn(8888);
+        int port = 8888;
+        Path storageFolder = Paths.get("databases");
+        int replicationPort = -1;
+        String replicaHost = null;
+        int replicaPort = -1;
+        if (args.length % 2 != 0) {
+            printUsage("Missing value for option " + args[args.length - 1]);
+            return;
+        }
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--storage":
+                        storageFolder = Paths.get(value);
+                        break;
+                    case "--replication-port":
+                        replicationPort = Integer.parseInt(value);
+                        break;
+                    case "--replica-of":
+                        int colon = value.lastIndexOf(':');
+                        if (colon <= 0 || colon == value.length() - 1) {
+                            printUsage("--replica-of expects <host:port> but got " + value);
+                            return;
+                        }
+                        replicaHost = value.substring(0, colon);
+                        replicaPort = Integer.parseInt(value.substring(colon + 1));
+                        break;
+                    default:
+                        printUsage("Unknown option " + args[i]);
+                        return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsage("Port numbers must be integers");
+            return;
+        }
+        if (replicaHost != null
+                && storageFolder.toAbsolutePath().normalize().equals(Paths.get("databases").toAbsolutePath().normalize())) {
+            // 副本会用主库快照替换存储目录中的表文件，不能与（默认目录下的）主库共用目录
+            printUsage("--replica-of requires --storage <folder> other than the default ./databases");
+            return;
+        }
+        DBServer server = new DBServer(storageFolder);
+        if (replicationPort >= 0) {
+            int boundPort = new ReplicationSource(server).start(replicationPort);
+            System.out.println("Replication listening on port " + boundPort);
+        }
+        if (replicaHost != null) {
+            new ReplicationFollower(server, replicaHost, replicaPort).start();
+            System.out.println("Running as read-only replica of " + replicaHost + ":" + replicaPort);
+        }
+        server.blockingListenOn(port);
+    }
+
+    private static void printUsage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: DBServer [--port <n>] [--storage <folder>] [--replication-port <n>] [--replica-of <host:port>]");
     }
 
     /**
      * KEEP this signature otherwise we won't be able to mark your submission correctly.
      */
     public DBServer() {
-        storageFolderPath = Paths.get("databases").toAbsolutePath().toString();
+        this(Paths.get("databases"));
+    }
+
+    /**
+     * 使用指定的存储目录创建服务器（用于基准测试或在同一台机器上运行多个服务器）
+     */
+    public DBServer(Path storageFolder) {
+        storageFolderPath = storageFolder.toAbsolutePath().toString();
         databases = new HashMap<>();
+        preparedStatements = new HashMap<>();
+        metrics = new DBMetrics();
         try {
             // Create the database storage folder if it doesn't already exist !
             Files.createDirectories(Paths.get(storageFolderPath));
@@ -67,6 +185,33 @@ public class DBServer {
      * <p>This method handles all incoming DB commands and carries out the required actions.
      */
     public String handleCommand(String command) {
+        // 复制线程会并发读取/修改数据，因此命令处理与其互斥
+        synchronized (this) {
+            commandStartNanos = System.nanoTime();
+            currentLatencies = metrics.latenciesFor(commandType(command));
+            String result = dispatchCommand(command);
+            currentLatencies[DBMetrics.TOTAL].record(System.nanoTime() - commandStartNanos);
+            if (result.startsWith("[ERROR]")) {
+                metrics.recordError();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 返回命令的第一个关键字（大写），用作统计分类
+     */
+    private static String commandType(String command) {
+        String trimmed = command.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String keyword = trimmed.substring(0, end).toUpperCase();
+        return COMMAND_TYPES.contains(keyword) ? keyword : "OTHER";
+    }
+
+    private String dispatchCommand(String command) {
         command = command.trim();
         if (!command.endsWith(";")) {
             return "[ERROR] Command must end with a semicolon";
@@ -75,9 +220,11 @@ public class DBServer {
         // 使用正则表达式匹配各类命令
 
         // 1. CREATE DATABASE <DatabaseName>;
-        Pattern createDatabasePattern = Pattern.compile("(?i)^CREATE\\s+DATABASE\\s+(\\w+)\\s*;$");
-        Matcher m = createDatabasePattern.matcher(command);
+        Matcher m = CREATE_DATABASE_PATTERN.matcher(command);
         if (m.matches()) {
+            if (readOnly) {
+                return READ_ONLY_ERROR;
+            }
             String dbName = m.group(1).toLowerCase();
             if (databases.containsKey(dbName)) {
                 return "[ERROR] Database already exists";
@@ -88,12 +235,12 @@ public class DBServer {
             }
             Database db = new Database(dbName);
             databases.put(dbName, db);
+            publishChange("DATABASE", dbName, null, new ArrayList<>());
             return "[OK] Database created";
         }
 
         // 2. USE <DatabaseName>;
-        Pattern usePattern = Pattern.compile("(?i)^USE\\s+(\\w+)\\s*;$");
-        m = usePattern.matcher(command);
+        m = USE_PATTERN.matcher(command);
         if (m.matches()) {
             String dbName = m.group(1).toLowerCase();
             if (!databases.containsKey(dbName)) {
@@ -104,9 +251,11 @@ public class DBServer {
         }
 
         // 3. CREATE TABLE <TableName> [(<AttributeList>)];
-        Pattern createTablePattern = Pattern.compile("(?i)^CREATE\\s+TABLE\\s+(\\w+)(?:\\s*\\(([^)]+)\\))?\\s*;$");
-        m = createTablePattern.matcher(command);
+        m = CREATE_TABLE_PATTERN.matcher(command);
         if (m.matches()) {
+            if (readOnly) {
+                return READ_ONLY_ERROR;
+            }
             String tableName = m.group(1).toLowerCase();
             if (currentDatabaseName == null) {
                 return "[ERROR] No database selected";
@@ -132,179 +281,569 @@ public class DBServer {
             Table table = new Table(tableName, columns);
             db.tables.put(tableName, table);
             // 在文件系统中创建表文件
-            File tableFile = new File(storageFolderPath + File.separator + currentDatabaseName, tableName + ".txt");
-            try (BufferedWriter writer = Files.newBufferedWriter(tableFile.toPath())) {
-                writer.write(String.join("\t", columns));
-                writer.newLine();
+            long persistStart = System.nanoTime();
+            try {
+                writeTableFile(currentDatabaseName, tableName, columns);
             } catch (IOException e) {
+                // 回滚内存中的表，避免内存、磁盘与副本不一致
+                db.tables.remove(tableName);
                 return "[ERROR] Failed to create table file";
             }
+            currentLatencies[DBMetrics.PERSIST].record(System.nanoTime() - persistStart);
+            publishChange("TABLE", currentDatabaseName, tableName, columns);
             return "[OK] Table created";
         }
 
         // 4. INSERT INTO <TableName> VALUES (<ValueList>);
-        Pattern insertPattern = Pattern.compile("(?i)^INSERT\\s+INTO\\s+(\\w+)\\s+VALUES\\s*\\((.+)\\)\\s*;$");
-        m = insertPattern.matcher(command);
+        m = INSERT_PATTERN.matcher(command);
         if (m.matches()) {
-            String tableName = m.group(1).toLowerCase();
-            if (currentDatabaseName == null) {
-                return "[ERROR] No database selected";
+            StatementPlan plan = parseInsert(m);
+            recordParsed();
+            if (plan.parameterCount > 0) {
+                return "[ERROR] Parameters are only allowed in prepared statements";
             }
-            Database db = databases.get(currentDatabaseName);
-            if (!db.tables.containsKey(tableName)) {
-                return "[ERROR] Table does not exist";
+            return executeInsert(plan, new ArrayList<>());
+        }
+
+        // 5. SELECT <WildAttribList> FROM <TableName> [WHERE <Condition>];
+        m = SELECT_PATTERN.matcher(command);
+        if (m.matches()) {
+            StatementPlan plan = parseSelect(m);
+            recordParsed();
+            if (plan == null) {
+                return "[ERROR] Invalid condition";
             }
-            Table table = db.tables.get(tableName);
-            String valuesPart = m.group(2);
-            // 简单按逗号分割（假设字符串中不含逗号）
-            String[] valueTokens = valuesPart.split(",");
-            List<String> values = new ArrayList<>();
-            for (String token : valueTokens) {
-                String val = token.trim();
-                if (val.startsWith("'") && val.endsWith("'") && val.length() >= 2) {
-                    val = val.substring(1, val.length() - 1);
+            if (plan.parameterCount > 0) {
+                return "[ERROR] Parameters are only allowed in prepared statements";
+            }
+            return executeSelect(plan, new ArrayList<>());
+        }
+
+        // 6. PREPARE <StatementName> AS <Select | Insert>;（语句中的 ? 为参数占位符）
+        m = PREPARE_PATTERN.matcher(command);
+        if (m.matches()) {
+            String statementName = m.group(1).toLowerCase();
+            String statement = m.group(2).trim();
+            StatementPlan plan = null;
+            Matcher inner = INSERT_PATTERN.matcher(statement);
+            if (inner.matches()) {
+                plan = parseInsert(inner);
+            } else {
+                inner = SELECT_PATTERN.matcher(statement);
+                if (inner.matches()) {
+                    plan = parseSelect(inner);
+                    if (plan == null) {
+                        return "[ERROR] Invalid condition";
+                    }
                 }
-                values.add(val);
-            }
-            if (values.size() != table.columns.size() - 1) {
-                return "[ERROR] Incorrect number of values";
-            }
-            String idStr = String.valueOf(table.nextId);
-            table.nextId++;
-            List<String> row = new ArrayList<>();
-            row.add(idStr);
-            row.addAll(values);
-            table.rows.add(row);
-            // 将新行追加到表文件中
-            File tableFile = new File(storageFolderPath + File.separator + currentDatabaseName, tableName + ".txt");
-            try (BufferedWriter writer = Files.newBufferedWriter(tableFile.toPath(), java.nio.file.StandardOpenOption.APPEND)) {
-                writer.write(String.join("\t", row));
-                writer.newLine();
-            } catch (IOException e) {
-                return "[ERROR] Failed to write to table file";
             }
-            return "[OK] Row inserted";
+            if (plan == null) {
+                return "[ERROR] Only SELECT and INSERT statements can be prepared";
+            }
+            preparedStatements.put(statementName, plan);
+            return "[OK] Statement prepared with " + plan.parameterCount + " parameter(s)";
         }
 
-        // 5. SELECT <WildAttribList> FROM <TableName> [WHERE <Condition>];
-        Pattern selectPattern = Pattern.compile("(?i)^SELECT\\s+(.+?)\\s+FROM\\s+(\\w+)(?:\\s+WHERE\\s+(.+))?\\s*;$");
-        m = selectPattern.matcher(command);
+        // 7. EXECUTE <StatementName> [(<ValueList>)];
+        m = EXECUTE_PATTERN.matcher(command);
         if (m.matches()) {
-            String selectColumns = m.group(1).trim();
-            String tableName = m.group(2).toLowerCase();
-            String condition = (m.groupCount() >= 3) ? m.group(3) : null;
-            if (currentDatabaseName == null) {
-                return "[ERROR] No database selected";
+            StatementPlan plan = preparedStatements.get(m.group(1).toLowerCase());
+            if (plan == null) {
+                return "[ERROR] Prepared statement does not exist";
             }
-            Database db = databases.get(currentDatabaseName);
-            if (!db.tables.containsKey(tableName)) {
-                return "[ERROR] Table does not exist";
+            List<String> params = new ArrayList<>();
+            if (m.group(2) != null && !m.group(2).trim().isEmpty()) {
+                for (String token : splitValueList(m.group(2))) {
+                    params.add(unquote(token.trim()));
+                }
             }
-            Table table = db.tables.get(tableName);
-            List<Integer> colIndices = new ArrayList<>();
-            List<String> headerOutput = new ArrayList<>();
-            if (selectColumns.equals("*")) {
-                for (int i = 0; i < table.columns.size(); i++) {
-                    colIndices.add(i);
-                    headerOutput.add(table.columns.get(i));
+            recordParsed();
+            if (params.size() != plan.parameterCount) {
+                return "[ERROR] Expected " + plan.parameterCount + " parameter(s) but got " + params.size();
+            }
+            return plan.isSelect ? executeSelect(plan, params) : executeInsert(plan, params);
+        }
+
+        // 8. DEALLOCATE <StatementName>;
+        m = DEALLOCATE_PATTERN.matcher(command);
+        if (m.matches()) {
+            if (preparedStatements.remove(m.group(1).toLowerCase()) == null) {
+                return "[ERROR] Prepared statement does not exist";
+            }
+            return "[OK] Statement deallocated";
+        }
+
+        // 9. SHOW STATS;
+        m = SHOW_STATS_PATTERN.matcher(command);
+        if (m.matches()) {
+            return "[OK]\n" + metrics.report();
+        }
+
+        return "[ERROR] Unrecognized command";
+    }
+
+    /**
+     * 记录从收到命令到解析完成所用的时间
+     */
+    private void recordParsed() {
+        currentLatencies[DBMetrics.PARSE].record(System.nanoTime() - commandStartNanos);
+    }
+
+    /**
+     * 解析 INSERT 语句，生成可重复执行的计划（值列表中未加引号的 ? 为参数占位符，用 null 表示）
+     */
+    private StatementPlan parseInsert(Matcher m) {
+        StatementPlan plan = new StatementPlan(false, m.group(1).toLowerCase());
+        plan.insertValues = new ArrayList<>();
+        for (String token : splitValueList(m.group(2))) {
+            String val = token.trim();
+            if (val.equals("?")) {
+                plan.insertValues.add(null);
+                plan.parameterCount++;
+            } else {
+                plan.insertValues.add(unquote(val));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 解析 SELECT 语句，生成可重复执行的计划；条件无法解析时返回 null
+     */
+    private StatementPlan parseSelect(Matcher m) {
+        StatementPlan plan = new StatementPlan(true, m.group(2).toLowerCase());
+        plan.selectColumns = m.group(1).trim();
+        String condition = m.group(3);
+        if (condition != null && !condition.trim().isEmpty()) {
+            // 目前仅支持简单的单条件：<AttributeName> <Comparator> <Value>
+            Matcher condMatcher = CONDITION_PATTERN.matcher(condition.trim());
+            if (!condMatcher.matches()) {
+                return null;
+            }
+            plan.condColumn = condMatcher.group(1);
+            plan.comparator = condMatcher.group(2).toUpperCase();
+            String condValue = condMatcher.group(3).trim();
+            if (condValue.equals("?")) {
+                plan.parameterCount++;
+            } else {
+                plan.condValue = unquote(condValue);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 将参数绑定到 INSERT 计划并执行
+     */
+    private String executeInsert(StatementPlan plan, List<String> params) {
+        if (readOnly) {
+            return READ_ONLY_ERROR;
+        }
+        if (currentDatabaseName == null) {
+            return "[ERROR] No database selected";
+        }
+        Database db = databases.get(currentDatabaseName);
+        if (!db.tables.containsKey(plan.tableName)) {
+            return "[ERROR] Table does not exist";
+        }
+        Table table = db.tables.get(plan.tableName);
+        if (plan.insertValues.size() != table.columns.size() - 1) {
+            return "[ERROR] Incorrect number of values";
+        }
+        long executeStart = System.nanoTime();
+        String idStr = String.valueOf(table.nextId);
+        List<String> row = new ArrayList<>();
+        row.add(idStr);
+        int nextParam = 0;
+        for (String val : plan.insertValues) {
+            row.add(val != null ? val : params.get(nextParam++));
+        }
+        for (String val : row) {
+            // 制表符是表文件和复制流中的分隔符
+            if (val.indexOf('\t') >= 0) {
+                return "[ERROR] Values cannot contain tab characters";
+            }
+        }
+        table.nextId++;
+        table.rows.add(row);
+        long persistStart = System.nanoTime();
+        currentLatencies[DBMetrics.EXECUTE].record(persistStart - executeStart);
+        // 将新行追加到表文件中
+        try {
+            appendRowToFile(currentDatabaseName, plan.tableName, row);
+        } catch (IOException e) {
+            // 回滚内存中的新行，避免内存、磁盘与副本不一致
+            table.rows.remove(table.rows.size() - 1);
+            table.nextId--;
+            return "[ERROR] Failed to write to table file";
+        }
+        currentLatencies[DBMetrics.PERSIST].record(System.nanoTime() - persistStart);
+        publishChange("ROW", currentDatabaseName, plan.tableName, row);
+        return "[OK] Row inserted";
+    }
+
+    /**
+     * 将参数绑定到 SELECT 计划并执行（列下标在表未变化时直接复用上一次的规划结果）
+     */
+    private String executeSelect(StatementPlan plan, List<String> params) {
+        if (currentDatabaseName == null) {
+            return "[ERROR] No database selected";
+        }
+        Database db = databases.get(currentDatabaseName);
+        if (!db.tables.containsKey(plan.tableName)) {
+            return "[ERROR] Table does not exist";
+        }
+        Table table = db.tables.get(plan.tableName);
+        if (plan.plannedTable != table) {
+            // 只有规划缓存未命中时才记录 plan 阶段
+            long planStart = System.nanoTime();
+            String error = planSelect(plan, table);
+            if (error != null) {
+                return error;
+            }
+            currentLatencies[DBMetrics.PLAN].record(System.nanoTime() - planStart);
+        }
+        long executeStart = System.nanoTime();
+        String condValue = plan.condColumn == null ? null : (plan.condValue != null ? plan.condValue : params.get(0));
+        Double condNum = null;
+        if (condValue != null) {
+            try {
+                condNum = Double.parseDouble(condValue);
+            } catch (NumberFormatException e) {
+                // 非数字则保持 null
+            }
+        }
+        // 对数据行进行条件过滤
+        List<List<String>> resultRows = new ArrayList<>();
+        for (List<String> row : table.rows) {
+            if (condValue == null || matchesCondition(row.get(plan.condColIndex), plan.comparator, condValue, condNum)) {
+                resultRows.add(row);
+            }
+        }
+        long serializeStart = System.nanoTime();
+        currentLatencies[DBMetrics.EXECUTE].record(serializeStart - executeStart);
+        plan.plannedRows.record(table.rows.size(), resultRows.size());
+        // 构造输出（第一行为列标题，其后每行一条记录，各列之间使用制表符分隔）
+        StringBuilder output = new StringBuilder("[OK]\n");
+        output.append(String.join("\t", plan.headerOutput));
+        for (List<String> row : resultRows) {
+            output.append("\n");
+            List<String> rowOutput = new ArrayList<>();
+            for (Integer idx : plan.colIndices) {
+                rowOutput.add(row.get(idx));
+            }
+            output.append(String.join("\t", rowOutput));
+        }
+        String result = output.toString();
+        currentLatencies[DBMetrics.SERIALIZE].record(System.nanoTime() - serializeStart);
+        return result;
+    }
+
+    /**
+     * 根据表结构计算 SELECT 计划所需的列下标；出错时返回错误信息
+     */
+    private String planSelect(StatementPlan plan, Table table) {
+        List<Integer> colIndices = new ArrayList<>();
+        List<String> headerOutput = new ArrayList<>();
+        if (plan.selectColumns.equals("*")) {
+            for (int i = 0; i < table.columns.size(); i++) {
+                colIndices.add(i);
+                headerOutput.add(table.columns.get(i));
+            }
+        } else {
+            String[] cols = plan.selectColumns.split(",");
+            for (String col : cols) {
+                String trimmed = col.trim();
+                int index = table.columns.indexOf(trimmed);
+                if (index == -1) {
+                    return "[ERROR] Column " + trimmed + " does not exist";
                 }
+                colIndices.add(index);
+                headerOutput.add(trimmed);
+            }
+        }
+        int condColIndex = -1;
+        if (plan.condColumn != null) {
+            condColIndex = table.columns.indexOf(plan.condColumn);
+            if (condColIndex == -1) {
+                return "[ERROR] Column " + plan.condColumn + " does not exist";
+            }
+        }
+        plan.colIndices = colIndices;
+        plan.headerOutput = headerOutput;
+        plan.condColIndex = condColIndex;
+        plan.plannedTable = table;
+        plan.plannedRows = metrics.rowsFor(currentDatabaseName + "." + plan.tableName);
+        return null;
+    }
+
+    private static boolean matchesCondition(String cellValue, String comparator, String condValue, Double condNum) {
+        // 尝试进行数字比较
+        Double cellNum = null;
+        if (condNum != null) {
+            try {
+                cellNum = Double.parseDouble(cellValue);
+            } catch (NumberFormatException e) {
+                // 非数字则保持 null
+            }
+        }
+        switch (comparator) {
+            case "==":
+                return cellValue.equals(condValue);
+            case "!=":
+                return !cellValue.equals(condValue);
+            case ">":
+                return cellNum != null && cellNum > condNum;
+            case "<":
+                return cellNum != null && cellNum < condNum;
+            case ">=":
+                return cellNum != null && cellNum >= condNum;
+            case "<=":
+                return cellNum != null && cellNum <= condNum;
+            case "LIKE":
+                return cellValue.contains(condValue);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 按逗号分割值列表，忽略单引号字符串内部的逗号
+     */
+    private static List<String> splitValueList(String valueList) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (char c : valueList.toCharArray()) {
+            if (c == '\'') {
+                inQuotes = !inQuotes;
+            }
+            if (c == ',' && !inQuotes) {
+                tokens.add(current.toString());
+                current.setLength(0);
             } else {
-                String[] cols = selectColumns.split(",");
-                for (String col : cols) {
-                    String trimmed = col.trim();
-                    int index = table.columns.indexOf(trimmed);
-                    if (index == -1) {
-                        return "[ERROR] Column " + trimmed + " does not exist";
-                    }
-                    colIndices.add(index);
-                    headerOutput.add(trimmed);
+                current.append(c);
+            }
+        }
+        tokens.add(current.toString());
+        return tokens;
+    }
+
+    /**
+     * 去掉字符串两端的单引号，并将其中的 '' 还原为 '
+     */
+    private static String unquote(String val) {
+        if (val.startsWith("'") && val.endsWith("'") && val.length() >= 2) {
+            return val.substring(1, val.length() - 1).replace("''", "'");
+        }
+        return val;
+    }
+
+    /**
+     * 将表头写入（或覆盖）表文件
+     */
+    private void writeTableFile(String dbName, String tableName, List<String> columns) throws IOException {
+        File tableFile = new File(storageFolderPath + File.separator + dbName, tableName + ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(tableFile.toPath())) {
+            writer.write(String.join("\t", columns));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * 将一行追加到表文件中
+     */
+    private void appendRowToFile(String dbName, String tableName, List<String> row) throws IOException {
+        File tableFile = new File(storageFolderPath + File.separator + dbName, tableName + ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(tableFile.toPath(), java.nio.file.StandardOpenOption.APPEND)) {
+            writer.write(String.join("\t", row));
+            writer.newLine();
+        }
+    }
+
+    // === Replication: change feed on the primary, change application on the replica ===
+    // 变更记录格式（制表符分隔）：<类型> <序号> <主库时间戳毫秒> <数据库> [<表> <列或值>...]
+    // 类型为 DATABASE、TABLE、ROW；快照以 SNAPSHOT_END 结束；HEARTBEAT 携带主库当前的最新序号
+
+    DBMetrics getMetrics() {
+        return metrics;
+    }
+
+    long getChangeSequence() {
+        return changeSequence;
+    }
+
+    synchronized void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * 记录一次成功的写操作，并在有订阅者时推送给它们（只入队，不阻塞命令处理）。
+     * 队列已满说明副本跟不上，此时断开它，让它重新连接并从新的快照开始同步
+     */
+    private void publishChange(String type, String dbName, String tableName, List<String> fields) {
+        changeSequence++;
+        if (changeSubscribers.isEmpty()) {
+            return;
+        }
+        String change = formatChange(type, changeSequence, System.currentTimeMillis(), dbName, tableName, fields);
+        for (Map.Entry<BlockingQueue<String>, Runnable> subscriber : changeSubscribers.entrySet()) {
+            if (!subscriber.getKey().offer(change)) {
+                changeSubscribers.remove(subscriber.getKey());
+                subscriber.getValue().run();
+            }
+        }
+    }
+
+    private static String formatChange(String type, long sequence, long timestamp, String dbName, String tableName, List<String> fields) {
+        StringBuilder change = new StringBuilder(type).append("\t").append(sequence).append("\t").append(timestamp)
+            .append("\t").append(dbName);
+        if (tableName != null) {
+            change.append("\t").append(tableName);
+            for (String field : fields) {
+                change.append("\t").append(field);
+            }
+        }
+        return change.toString();
+    }
+
+    /**
+     * 捕获当前数据的快照并注册订阅者；两者在同一把锁内完成，因此快照之后的每个变更都会进入队列。
+     * 锁内只复制行列表的引用（已插入的行不会再被修改），格式化和发送在锁外进行
+     */
+    synchronized ChangeSnapshot subscribeToChanges(BlockingQueue<String> subscriber, Runnable onOverflow) {
+        ChangeSnapshot snapshot = new ChangeSnapshot(changeSequence);
+        for (Database db : databases.values()) {
+            snapshot.databases.add(db.name);
+            for (Table table : db.tables.values()) {
+                snapshot.tables.add(new ChangeSnapshot.TableCopy(db.name, table.name,
+                    new ArrayList<>(table.columns), new ArrayList<>(table.rows)));
+            }
+        }
+        changeSubscribers.put(subscriber, onOverflow);
+        return snapshot;
+    }
+
+    void unsubscribeFromChanges(BlockingQueue<String> subscriber) {
+        changeSubscribers.remove(subscriber);
+    }
+
+    // 主库某一时刻的数据副本，由复制发送线程在锁外格式化并写出
+    static class ChangeSnapshot {
+        final long sequence;
+        final long timestamp = System.currentTimeMillis();
+        final List<String> databases = new ArrayList<>();
+        final List<TableCopy> tables = new ArrayList<>();
+
+        ChangeSnapshot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void writeTo(BufferedWriter writer) throws IOException {
+            for (String dbName : databases) {
+                writer.write(formatChange("DATABASE", sequence, timestamp, dbName, null, null));
+                writer.newLine();
+            }
+            for (TableCopy table : tables) {
+                writer.write(formatChange("TABLE", sequence, timestamp, table.dbName, table.name, table.columns));
+                writer.newLine();
+                for (List<String> row : table.rows) {
+                    writer.write(formatChange("ROW", sequence, timestamp, table.dbName, table.name, row));
+                    writer.newLine();
                 }
             }
-            // 对数据行进行条件过滤（目前仅支持简单的单条件：<AttributeName> <Comparator> <Value>）
-            List<List<String>> resultRows = new ArrayList<>();
-            for (List<String> row : table.rows) {
-                if (condition == null || condition.trim().isEmpty()) {
-                    resultRows.add(row);
-                } else {
-                    Pattern condPattern = Pattern.compile("(?i)^(\\w+)\\s*(==|>|<|>=|<=|!=|LIKE)\\s*(.+)$");
-                    Matcher condMatcher = condPattern.matcher(condition.trim());
-                    if (!condMatcher.matches()) {
-                        return "[ERROR] Invalid condition";
-                    }
-                    String condColumn = condMatcher.group(1);
-                    String comparator = condMatcher.group(2);
-                    String condValue = condMatcher.group(3).trim();
-                    if (condValue.startsWith("'") && condValue.endsWith("'") && condValue.length() >= 2) {
-                        condValue = condValue.substring(1, condValue.length() - 1);
-                    }
-                    int colIndex = table.columns.indexOf(condColumn);
-                    if (colIndex == -1) {
-                        return "[ERROR] Column " + condColumn + " does not exist";
-                    }
-                    String cellValue = row.get(colIndex);
-                    boolean conditionMatches = false;
-                    // 尝试进行数字比较
-                    Double cellNum = null, condNum = null;
-                    try {
-                        cellNum = Double.parseDouble(cellValue);
-                        condNum = Double.parseDouble(condValue);
-                    } catch (NumberFormatException e) {
-                        // 非数字则保持 null
-                    }
-                    switch (comparator) {
-                        case "==":
-                            conditionMatches = cellValue.equals(condValue);
-                            break;
-                        case "!=":
-                            conditionMatches = !cellValue.equals(condValue);
-                            break;
-                        case ">":
-                            if (cellNum != null && condNum != null)
-                                conditionMatches = cellNum > condNum;
-                            break;
-                        case "<":
-                            if (cellNum != null && condNum != null)
-                                conditionMatches = cellNum < condNum;
-                            break;
-                        case ">=":
-                            if (cellNum != null && condNum != null)
-                                conditionMatches = cellNum >= condNum;
-                            break;
-                        case "<=":
-                            if (cellNum != null && condNum != null)
-                                conditionMatches = cellNum <= condNum;
-                            break;
-                        case "LIKE":
-                            conditionMatches = cellValue.contains(condValue);
-                            break;
-                        default:
-                            return "[ERROR] Unknown comparator";
-                    }
-                    if (conditionMatches) {
-                        resultRows.add(row);
+            writer.write("SNAPSHOT_END\t" + sequence + "\t" + timestamp);
+            writer.newLine();
+        }
+
+        static class TableCopy {
+            final String dbName;
+            final String name;
+            final List<String> columns;
+            final List<List<String>> rows;
+
+            TableCopy(String dbName, String name, List<String> columns, List<List<String>> rows) {
+                this.dbName = dbName;
+                this.name = name;
+                this.columns = columns;
+                this.rows = rows;
+            }
+        }
+    }
+
+    /**
+     * 副本：用主库快照替换本地所有数据（在一把锁内完成，读请求不会看到一半的快照）
+     */
+    synchronized void applySnapshot(List<String[]> changes) throws IOException {
+        File[] dbDirs = new File(storageFolderPath).listFiles(File::isDirectory);
+        if (dbDirs != null) {
+            for (File dbDir : dbDirs) {
+                // 只删除表文件；目录中若还有其他文件则保留该目录
+                File[] tableFiles = dbDir.listFiles((dir, filename) -> filename.endsWith(".txt"));
+                if (tableFiles != null) {
+                    for (File tableFile : tableFiles) {
+                        Files.delete(tableFile.toPath());
                     }
                 }
-            }
-            // 构造输出（第一行为列标题，其后每行一条记录，各列之间使用制表符分隔）
-            StringBuilder output = new StringBuilder("[OK]\n");
-            output.append(String.join("\t", headerOutput));
-            for (List<String> row : resultRows) {
-                output.append("\n");
-                List<String> rowOutput = new ArrayList<>();
-                for (Integer idx : colIndices) {
-                    rowOutput.add(row.get(idx));
+                String[] remaining = dbDir.list();
+                if (remaining != null && remaining.length == 0) {
+                    Files.delete(dbDir.toPath());
                 }
-                output.append(String.join("\t", rowOutput));
             }
-            return output.toString();
         }
+        databases.clear();
+        for (String[] change : changes) {
+            applyChange(change);
+        }
+        if (currentDatabaseName != null && !databases.containsKey(currentDatabaseName)) {
+            currentDatabaseName = null;
+        }
+    }
 
-        return "[ERROR] Unrecognized command";
+    /**
+     * 副本：应用主库推送的一条变更
+     */
+    synchronized void applyChange(String[] change) throws IOException {
+        String type = change[0];
+        String dbName = change[3];
+        if (type.equals("DATABASE")) {
+            Files.createDirectories(Paths.get(storageFolderPath, dbName));
+            databases.putIfAbsent(dbName, new Database(dbName));
+            return;
+        }
+        Database db = databases.get(dbName);
+        if (db == null || change.length < 5) {
+            throw new IOException("Replicated change refers to unknown database " + dbName);
+        }
+        String tableName = change[4];
+        List<String> fields = new ArrayList<>(List.of(change).subList(5, change.length));
+        if (type.equals("TABLE")) {
+            db.tables.put(tableName, new Table(tableName, fields));
+            writeTableFile(dbName, tableName, fields);
+        } else if (type.equals("ROW")) {
+            Table table = db.tables.get(tableName);
+            if (table == null) {
+                throw new IOException("Replicated change refers to unknown table " + dbName + "." + tableName);
+            }
+            table.rows.add(fields);
+            try {
+                table.nextId = Math.max(table.nextId, Integer.parseInt(fields.get(0)) + 1);
+            } catch (NumberFormatException e) {
+                // 忽略非数字 id
+            }
+            appendRowToFile(dbName, tableName, fields);
+        } else {
+            throw new IOException("Unknown replicated change type " + type);
+        }
     }
 
     // === Methods below handle networking aspects of the project - you will not need to change these ! ===
 
     public void blockingListenOn(int portNumber) throws IOException {
+        logger = new SampledLogger(LOG_SAMPLE_RATE);
+        // 统计文件放在存储目录旁边，这样同一台机器上的多个服务器不会互相覆盖
+        Path storageFolder = Paths.get(storageFolderPath);
+        startStatsDump(storageFolder.resolveSibling(storageFolder.getFileName() + "-stats.txt"));
         try (java.net.ServerSocket s = new java.net.ServerSocket(portNumber)) {
             System.out.println("Server listening on port " + portNumber);
             while (!Thread.interrupted()) {
@@ -325,9 +864,15 @@ public class DBServer {
              BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
 
             System.out.println("Connection established: " + serverSocket.getInetAddress());
+            // 每个连接是一个新的会话，不保留上一个会话准备的语句
+            preparedStatements.clear();
             while (!Thread.interrupted()) {
                 String incomingCommand = reader.readLine();
-                System.out.println("Received message: " + incomingCommand);
+                if (incomingCommand == null) {
+                    // 客户端已断开连接
+                    break;
+                }
+                logger.log("Received message: ", incomingCommand);
                 String result = handleCommand(incomingCommand);
                 writer.write(result);
                 writer.write("\n" + END_OF_TRANSMISSION + "\n");
@@ -336,6 +881,25 @@ public class DBServer {
         }
     }
 
+    // 定期将统计信息写入文件（守护线程，不阻塞服务器退出）
+    private void startStatsDump(Path statsFile) {
+        if (STATS_DUMP_INTERVAL_SECONDS <= 0) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-stats-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                metrics.dumpTo(statsFile);
+            } catch (IOException e) {
+                System.err.println("Failed to write stats file " + statsFile);
+            }
+        }, STATS_DUMP_INTERVAL_SECONDS, STATS_DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
     // 内部类：Database 表示一个数据库
     private class Database {
         String name;
@@ -408,4 +972,29 @@ public class DBServer {
             this.rows = new ArrayList<>();
         }
     }
+
+    // 内部类：StatementPlan 表示解析后的 SELECT/INSERT 语句，可绑定参数后重复执行
+    private class StatementPlan {
+        boolean isSelect;
+        String tableName;
+        int parameterCount;
+        // INSERT：值列表，null 表示参数占位符
+        List<String> insertValues;
+        // SELECT：原始列列表及条件（condValue 为 null 时表示条件值为参数）
+        String selectColumns;
+        String condColumn;
+        String comparator;
+        String condValue;
+        // SELECT 规划结果，仅在 plannedTable 未变化时复用
+        Table plannedTable;
+        DBMetrics.TableRows plannedRows;
+        List<Integer> colIndices;
+        List<String> headerOutput;
+        int condColIndex;
+
+        StatementPlan(boolean isSelect, String tableName) {
+            this.isSelect = isSelect;
+            this.tableName = tableName;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replica side of log-shipping replication. Puts the server into read-only mode, subscribes to the
+ * primary, replaces local data with the primary's snapshot and then applies the change feed as it
+ * arrives. On disconnect it reconnects and resynchronises from a fresh snapshot.
+ *
+ * <p>Progress is published as gauges on the server's {@link DBMetrics} (visible through
+ * {@code SHOW STATS;}). {@code replication.lag_ms} compares the primary's commit timestamp with the
+ * replica's clock, so it is only exact when both run on the same machine.
+ */
+public class ReplicationFollower {
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final DBServer server;
+    private final String host;
+    private final int port;
+    private final DBMetrics metrics;
+    private long appliedSequence;
+    private long primarySequence;
+
+    public ReplicationFollower(DBServer server, String host, int port) {
+        this.server = server;
+        this.host = host;
+        this.port = port;
+        this.metrics = server.getMetrics();
+    }
+
+    public void start() {
+        server.setReadOnly(true);
+        Thread follower = new Thread(() -> {
+            while (!Thread.interrupted()) {
+                try {
+                    follow();
+                } catch (IOException e) {
+                    System.err.println("Replication from " + host + ":" + port + " interrupted: " + e.getMessage());
+                }
+                metrics.setGauge("replication.connected", 0);
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    private void follow() throws IOException {
+        Socket unconnected = new Socket();
+        unconnected.setReceiveBufferSize(ReplicationSource.SOCKET_BUFFER_BYTES);
+        unconnected.connect(new InetSocketAddress(host, port));
+        try (Socket socket = unconnected;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write("SUBSCRIBE");
+            writer.newLine();
+            writer.flush();
+            metrics.setGauge("replication.connected", 1);
+
+            // 先缓存完整快照，再一次性替换本地数据
+            List<String[]> snapshot = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] change = line.split("\t", -1);
+                if (change[0].equals("SNAPSHOT_END")) {
+                    server.applySnapshot(snapshot);
+                    // 主库的序号不持久化，重启后会从 0 开始，因此以快照的序号为准重新计数
+                    appliedSequence = Long.parseLong(change[1]);
+                    primarySequence = appliedSequence;
+                    recordApplied(change);
+                    break;
+                }
+                snapshot.add(change);
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] change = line.split("\t", -1);
+                if (change[0].equals("HEARTBEAT")) {
+                    primarySequence = Math.max(primarySequence, Long.parseLong(change[1]));
+                    if (appliedSequence >= primarySequence) {
+                        metrics.setGauge("replication.lag_ms", 0);
+                    }
+                    updateLagGauges();
+                } else {
+                    server.applyChange(change);
+                    recordApplied(change);
+                }
+            }
+            throw new IOException("Primary closed the replication stream");
+        }
+    }
+
+    private void recordApplied(String[] change) {
+        appliedSequence = Long.parseLong(change[1]);
+        primarySequence = Math.max(primarySequence, appliedSequence);
+        metrics.setGauge("replication.lag_ms", Math.max(0, System.currentTimeMillis() - Long.parseLong(change[2])));
+        updateLagGauges();
+    }
+
+    private void updateLagGauges() {
+        metrics.setGauge("replication.applied_sequence", appliedSequence);
+        metrics.setGauge("replication.primary_sequence", primarySequence);
+        metrics.setGauge("replication.lag_entries", primarySequence - appliedSequence);
+    }
+}
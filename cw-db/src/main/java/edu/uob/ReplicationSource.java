@@ -0,0 +1,129 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primary side of log-shipping replication. Each replica that connects and sends {@code SUBSCRIBE}
+ * receives a full snapshot followed by the live change feed. The feed is drained by a sender
+ * thread per replica, so slow replicas never hold up command processing on the primary. Each
+ * replica's queue is bounded: a replica that falls {@code MAX_QUEUED_CHANGES} behind is
+ * disconnected, and resynchronises from a fresh snapshot when it reconnects.
+ *
+ * <p>Every flushed batch (and every idle interval) ends with a {@code HEARTBEAT} carrying the
+ * primary's latest sequence number, so the replica can tell how far behind it is.
+ */
+public class ReplicationSource {
+
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 1000;
+    private static final int MAX_QUEUED_CHANGES = 100_000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    // 限制套接字缓冲区，使积压留在有界队列中（可计入延迟并触发重新同步），而不是藏在内核缓冲区里
+    static final int SOCKET_BUFFER_BYTES = 64 * 1024;
+
+    private final DBServer server;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    public ReplicationSource(DBServer server) {
+        this.server = server;
+    }
+
+    /** Starts accepting replicas on {@code port} (0 picks a free port) and returns the bound port. */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        acceptor = new Thread(() -> {
+            while (!Thread.interrupted()) {
+                try {
+                    Socket replica = serverSocket.accept();
+                    replica.setSendBufferSize(SOCKET_BUFFER_BYTES);
+                    replicas.add(replica);
+                    Thread sender = new Thread(() -> serve(replica), "replication-sender");
+                    sender.setDaemon(true);
+                    sender.start();
+                } catch (IOException e) {
+                    System.err.println("Replication listener stopped: " + e.getMessage());
+                    return;
+                }
+            }
+        }, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /** Stops accepting replicas and disconnects the connected ones; the port is free once this returns. */
+    public void stop() throws InterruptedException {
+        if (serverSocket == null) {
+            return;
+        }
+        closeQuietly(serverSocket);
+        // 等待接受线程退出，否则端口可能仍被占用
+        acceptor.join();
+        for (Socket replica : replicas) {
+            closeQuietly(replica);
+        }
+    }
+
+    private void serve(Socket replica) {
+        BlockingQueue<String> changes = new ArrayBlockingQueue<>(MAX_QUEUED_CHANGES);
+        try (Socket s = replica;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+            String request = reader.readLine();
+            if (!"SUBSCRIBE".equals(request)) {
+                return;
+            }
+            DBServer.ChangeSnapshot snapshot = server.subscribeToChanges(changes, () -> closeQuietly(s));
+            snapshot.writeTo(writer);
+            writeHeartbeat(writer);
+            writer.flush();
+            while (!Thread.interrupted()) {
+                String change = changes.poll(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                // 批量写出已排队的变更（每批有上限，持续写入时也能定期刷新），再附上主库最新序号
+                for (int batched = 0; change != null; batched++) {
+                    writer.write(change);
+                    writer.newLine();
+                    change = batched + 1 < MAX_BATCH_SIZE ? changes.poll() : null;
+                }
+                writeHeartbeat(writer);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Replica disconnected: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.unsubscribeFromChanges(changes);
+            replicas.remove(replica);
+        }
+    }
+
+    private void writeHeartbeat(BufferedWriter writer) throws IOException {
+        writer.write("HEARTBEAT\t" + server.getChangeSequence() + "\t" + System.currentTimeMillis());
+        writer.newLine();
+    }
+
+    private static void closeQuietly(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 已经断开
+        }
+    }
+}
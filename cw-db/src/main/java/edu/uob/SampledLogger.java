@@ -0,0 +1,50 @@
+package edu.uob;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs one in every {@code sampleRate} messages on a background daemon thread, so the
+ * request path never blocks on console I/O. When the queue is full, messages are dropped
+ * rather than waited for.
+ */
+public class SampledLogger {
+
+    private final int sampleRate;
+    private final AtomicLong seen = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(1024);
+
+    public SampledLogger(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+        Thread writer = new Thread(this::drain, "db-logger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Logs {@code prefix + message} if this call is sampled; the string is only built when it is. */
+    public void log(String prefix, String message) {
+        if (seen.getAndIncrement() % sampleRate != 0) {
+            return;
+        }
+        if (!queue.offer(prefix + message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                String line = queue.take();
+                long droppedSoFar = dropped.getAndSet(0);
+                if (droppedSoFar > 0) {
+                    System.out.println("(" + droppedSoFar + " sampled log lines dropped)");
+                }
+                System.out.println(line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,8 +4,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
 import java.time.Duration;
 
 public class ExampleDBTests {
@@ -101,4 +106,170 @@ public class ExampleDBTests {
         assertFalse(response.contains("[OK]"), "An attempt was made to access a non-existent table, however an [OK] tag was returned");
     }
 
+    // A test to make sure that prepared statements can be executed repeatedly with different parameters
+    @Test
+    public void testPreparedSelectAndInsert() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        String response = sendCommandToServer("PREPARE addmark AS INSERT INTO marks VALUES (?, ?, ?);");
+        assertTrue(response.contains("[OK]"), "A valid PREPARE was made, however an [OK] tag was not returned");
+        sendCommandToServer("EXECUTE addmark ('Simon', 65, TRUE);");
+        sendCommandToServer("EXECUTE addmark ('Sion', 55, TRUE);");
+        sendCommandToServer("EXECUTE addmark ('Rob', 35, FALSE);");
+        sendCommandToServer("PREPARE above AS SELECT name FROM marks WHERE mark > ?;");
+        response = sendCommandToServer("EXECUTE above (50);");
+        assertTrue(response.contains("Simon") && response.contains("Sion"), "EXECUTE above (50) should have returned Simon and Sion");
+        assertFalse(response.contains("Rob"), "EXECUTE above (50) should not have returned Rob");
+        response = sendCommandToServer("EXECUTE above (60);");
+        assertTrue(response.contains("Simon"), "EXECUTE above (60) should have returned Simon");
+        assertFalse(response.contains("Sion"), "EXECUTE above (60) should not have returned Sion");
+        response = sendCommandToServer("EXECUTE above (1, 2);");
+        assertTrue(response.contains("[ERROR]"), "EXECUTE with the wrong number of parameters should return an [ERROR] tag");
+    }
+
+    // A test to make sure that bound parameters are stored as values rather than being interpreted as SQL
+    @Test
+    public void testPreparedParameterIsNotParsedAsSql() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE coursework (task, submission);");
+        sendCommandToServer("PREPARE addtask AS INSERT INTO coursework VALUES (?, ?);");
+        String response = sendCommandToServer("EXECUTE addtask ('STAG, 3); drop database " + randomName + ";', 2);");
+        assertTrue(response.contains("[OK]"), "A value containing SQL should have been inserted as a plain string");
+        response = sendCommandToServer("SELECT task FROM coursework WHERE submission == 2;");
+        assertTrue(response.contains("STAG, 3); drop database " + randomName + ";"), "The bound value should have been returned unchanged");
+    }
+
+    // A test to make sure that SHOW STATS reports per-command latencies and per-table row counts
+    @Test
+    public void testShowStats() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        sendCommandToServer("SELECT * FROM marks WHERE mark > 50;");
+        String response = sendCommandToServer("SHOW STATS;");
+        assertTrue(response.contains("[OK]"), "A valid SHOW STATS was made, however an [OK] tag was not returned");
+        assertTrue(response.contains("SELECT.total\tcount\t1\n"), "SHOW STATS should have counted one SELECT");
+        assertTrue(response.contains("INSERT.persist\tcount\t2\n"), "SHOW STATS should have counted two persisted INSERTs");
+        assertTrue(response.contains(randomName + ".marks\trows_scanned\t2"), "SHOW STATS should report 2 rows scanned for marks");
+        assertTrue(response.contains(randomName + ".marks\trows_returned\t1"), "SHOW STATS should report 1 row returned for marks");
+    }
+
+    // A test to make sure that a read-only replica receives existing and new data from its primary, and rejects writes
+    @Test
+    public void testReplicaFollowsPrimary(@TempDir Path primaryFolder, @TempDir Path replicaFolder) throws Exception {
+        server = new DBServer(primaryFolder);
+        sendCommandToServer("CREATE DATABASE school;");
+        sendCommandToServer("USE school;");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        int replicationPort = new ReplicationSource(server).start(0);
+        DBServer replica = new DBServer(replicaFolder);
+        new ReplicationFollower(replica, "localhost", replicationPort).start();
+
+        String response = waitForReplica(replica, "SELECT * FROM marks;", "Simon");
+        assertTrue(response.contains("Simon"), "Data that existed before the replica connected was not copied to it");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        response = waitForReplica(replica, "SELECT * FROM marks;", "Chris");
+        assertTrue(response.contains("Chris"), "A row inserted on the primary was not shipped to the replica");
+
+        response = replica.handleCommand("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        assertTrue(response.contains("[ERROR]"), "A write was made on a read-only replica, however an [ERROR] tag was not returned");
+        response = replica.handleCommand("SHOW STATS;");
+        assertTrue(response.contains("replication.lag_entries\tvalue\t"), "SHOW STATS on a replica should report replication lag");
+    }
+
+    // A test to make sure that replication lag returns to zero after the primary restarts (its sequence numbers start again from 0)
+    @Test
+    public void testReplicaLagResetsAfterPrimaryRestart(@TempDir Path primaryFolder, @TempDir Path replicaFolder) throws Exception {
+        server = new DBServer(primaryFolder);
+        sendCommandToServer("CREATE DATABASE school;");
+        sendCommandToServer("USE school;");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        for (int i = 0; i < 20; i++) {
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', " + i + ", TRUE);");
+        }
+        ReplicationSource source = new ReplicationSource(server);
+        int replicationPort = source.start(0);
+        DBServer replica = new DBServer(replicaFolder);
+        new ReplicationFollower(replica, "localhost", replicationPort).start();
+        String stats = waitForReplica(replica, "SHOW STATS;", "replication.applied_sequence\tvalue\t22\n");
+        assertTrue(stats.contains("replication.lag_entries\tvalue\t0\n"), "The replica should have caught up with the primary");
+
+        // Restart the primary on the same port: it reloads its tables but its change sequence starts again at 0
+        source.stop();
+        server = new DBServer(primaryFolder);
+        new ReplicationSource(server).start(replicationPort);
+        stats = waitForReplica(replica, "SHOW STATS;", "replication.applied_sequence\tvalue\t0\n");
+        assertTrue(stats.contains("replication.applied_sequence\tvalue\t0\n"), "The replica should have resynchronised from the restarted primary");
+        assertTrue(stats.contains("replication.lag_entries\tvalue\t0\n"), "Replication lag should be 0 after resynchronising with a restarted primary");
+        String response = waitForReplica(replica, "SELECT * FROM marks;", "Simon");
+        assertTrue(response.contains("Simon"), "The replica should still serve the primary's data after the restart");
+    }
+
+    // Polls the replica until a query's response contains the expected text (replication is asynchronous)
+    private String waitForReplica(DBServer replica, String query, String expected) throws InterruptedException {
+        String response = "";
+        for (int attempt = 0; attempt < 50 && !response.contains(expected); attempt++) {
+            Thread.sleep(100);
+            replica.handleCommand("USE school;");
+            response = replica.handleCommand(query);
+        }
+        return response;
+    }
+
+    // A test to make sure that DBClient sends parameters as values, and refuses line breaks that would start a new command
+    @Test
+    public void testClientExecuteBindsParameters(@TempDir Path storageFolder) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        DBServer socketServer = new DBServer(storageFolder);
+        final int serverPort = port;
+        Thread serverThread = new Thread(() -> {
+            try {
+                socketServer.blockingListenOn(serverPort);
+            } catch (IOException e) {
+                // The daemon server thread simply ends with the test JVM
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        try (DBClient client = connectClient(serverPort)) {
+            client.sendCommand("CREATE DATABASE school;");
+            client.sendCommand("USE school;");
+            client.sendCommand("CREATE TABLE marks (name, mark);");
+            client.prepare("addmark", "INSERT INTO marks VALUES (?, ?)");
+            String response = client.execute("addmark", "O'Brien, 3); drop database school;", 65);
+            assertTrue(response.contains("[OK]"), "A string parameter containing SQL should have been inserted as a plain value");
+            assertThrows(IllegalArgumentException.class, () -> client.execute("addmark", "x');\nINSERT INTO marks VALUES ('evil", 1),
+                "A parameter containing a line break should have been rejected by the client");
+            assertThrows(IllegalArgumentException.class, () -> client.execute("addmark", "a\tb", 1),
+                "A parameter containing a tab should have been rejected by the client");
+            response = client.sendCommand("SELECT name FROM marks;");
+            assertTrue(response.contains("O'Brien, 3); drop database school;"), "The bound value should have been returned unchanged");
+            assertFalse(response.contains("evil"), "A rejected parameter should not have reached the server");
+        }
+    }
+
+    // The server thread takes a moment to start listening, so retry the connection
+    private DBClient connectClient(int port) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new DBClient("localhost", port);
+            } catch (IOException e) {
+                if (attempt >= 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
 }